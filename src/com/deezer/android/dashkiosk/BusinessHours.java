@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2016 Vincent Bernat <vbe@deezer.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.deezer.android.dashkiosk;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Weekly schedule of business hours: the same opening and closing
+ * times on a set of days. When the closing time is not after the
+ * opening time, business hours span over midnight.
+ */
+public class BusinessHours {
+
+    private final Set<Integer> mDays;
+    private final int mOpen;
+    private final int mClose;
+
+    /**
+     * Create a schedule. Days are `Calendar.SUNDAY` to
+     * `Calendar.SATURDAY`, opening and closing times are in minutes
+     * since midnight. At least one day is needed.
+     */
+    public BusinessHours(Set<Integer> days, int open, int close) {
+        if (days.isEmpty()) {
+            throw new IllegalArgumentException("no opening day");
+        }
+        mDays = new HashSet<Integer>(days);
+        mOpen = open;
+        mClose = close;
+    }
+
+    /**
+     * Parse a time like `08:30` into minutes since midnight. `24:00`
+     * is accepted as a closing time.
+     */
+    public static int parseTime(String time) {
+        String[] parts = time.trim().split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("invalid time `" + time + "`");
+        }
+        int hours, minutes;
+        try {
+            hours = Integer.parseInt(parts[0]);
+            minutes = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid time `" + time + "`");
+        }
+        if (hours < 0 || minutes < 0 || minutes > 59 ||
+            hours > 24 || (hours == 24 && minutes != 0)) {
+            throw new IllegalArgumentException("invalid time `" + time + "`");
+        }
+        return hours * 60 + minutes;
+    }
+
+    /**
+     * Tell if the given time is within business hours.
+     */
+    public boolean isOpen(Calendar when) {
+        int day = when.get(Calendar.DAY_OF_WEEK);
+        int minutes = when.get(Calendar.HOUR_OF_DAY) * 60 + when.get(Calendar.MINUTE);
+        if (mClose > mOpen) {
+            return mDays.contains(day) && minutes >= mOpen && minutes < mClose;
+        }
+        int yesterday = day == Calendar.SUNDAY ? Calendar.SATURDAY : day - 1;
+        return (mDays.contains(day) && minutes >= mOpen) ||
+            (mDays.contains(yesterday) && minutes < mClose);
+    }
+
+    /**
+     * Tell if the dashboard should be awake at the given time: either
+     * within business hours or less than `prewarm` milliseconds
+     * before opening.
+     */
+    public boolean isAwake(Calendar when, long prewarm) {
+        if (isOpen(when)) {
+            return true;
+        }
+        Calendar later = (Calendar)when.clone();
+        later.setTimeInMillis(when.getTimeInMillis() + prewarm);
+        return isOpen(later);
+    }
+
+    /**
+     * Return the time (in milliseconds since epoch) of the next
+     * change of the awake state after the given time, or -1 if the
+     * state never changes.
+     */
+    public long nextChange(Calendar from, long prewarm) {
+        boolean awake = isAwake(from, prewarm);
+        for (long candidate : boundaries(from, prewarm)) {
+            if (candidate <= from.getTimeInMillis()) {
+                continue;
+            }
+            Calendar when = (Calendar)from.clone();
+            when.setTimeInMillis(candidate);
+            if (isAwake(when, prewarm) != awake) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return, in order, the times where the awake state may change
+     * from the day before the given time to a week after: wake up
+     * before opening time and closing time of each opening day.
+     */
+    private List<Long> boundaries(Calendar from, long prewarm) {
+        List<Long> boundaries = new ArrayList<Long>();
+        for (int offset = -1; offset <= 8; offset++) {
+            Calendar day = (Calendar)from.clone();
+            day.add(Calendar.DAY_OF_MONTH, offset);
+            if (!mDays.contains(day.get(Calendar.DAY_OF_WEEK))) {
+                continue;
+            }
+            boundaries.add(at(day, 0, mOpen) - prewarm);
+            boundaries.add(at(day, mClose > mOpen ? 0 : 1, mClose));
+        }
+        Collections.sort(boundaries);
+        return boundaries;
+    }
+
+    /**
+     * Return the time of the given day (shifted by `days`) at
+     * `minutes` since midnight, in local time.
+     */
+    private static long at(Calendar day, int days, int minutes) {
+        Calendar when = (Calendar)day.clone();
+        when.add(Calendar.DAY_OF_MONTH, days);
+        when.set(Calendar.HOUR_OF_DAY, 0);
+        when.set(Calendar.MINUTE, 0);
+        when.set(Calendar.SECOND, 0);
+        when.set(Calendar.MILLISECOND, 0);
+        /* Lenient calendar: 24:00 is midnight of the next day */
+        when.set(Calendar.HOUR_OF_DAY, minutes / 60);
+        when.set(Calendar.MINUTE, minutes % 60);
+        return when.getTimeInMillis();
+    }
+
+}
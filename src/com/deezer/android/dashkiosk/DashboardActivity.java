@@ -18,7 +18,10 @@ package com.deezer.android.dashkiosk;
 
 import android.app.ActionBar;
 import android.app.Activity;
+import android.app.AlarmManager;
 import android.app.LoaderManager;
+import android.app.PendingIntent;
+import android.content.Context;
 import android.content.Intent;
 import android.content.Loader;
 import android.content.SharedPreferences;
@@ -35,13 +38,20 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.WindowManager;
 import android.view.View;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
+import com.deezer.android.dashkiosk.BusinessHours;
+import com.deezer.android.dashkiosk.DashboardScheduleReceiver;
 import com.deezer.android.dashkiosk.DashboardWebView;
 
 public class DashboardActivity extends Activity {
 
     private static final String TAG = "DashKiosk";
     DashboardWebView mWebView = null;
+    private boolean mSuspended = false;
 
     /**
      * Hide user interface the best we can.
@@ -145,6 +155,119 @@ public class DashboardActivity extends Activity {
         }
     }
 
+    /**
+     * Suspend or resume the dashboard depending on business hours and
+     * schedule the next change with an alarm, to be able to wake up
+     * the device before opening time. The alarm is received by
+     * `DashboardScheduleReceiver` which brings back the activity,
+     * triggering `onResume()`.
+     */
+    private void applySchedule() {
+        AlarmManager alarmManager = (AlarmManager)getSystemService(Context.ALARM_SERVICE);
+        Intent intent = new Intent(this, DashboardScheduleReceiver.class)
+            .setAction(DashboardScheduleReceiver.ACTION_SCHEDULE);
+        alarmManager.cancel(PendingIntent.getBroadcast(
+            this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT));
+
+        SharedPreferences sharedPref = PreferenceManager
+            .getDefaultSharedPreferences(getApplication());
+        if (!sharedPref.getBoolean("pref_schedule", false)) {
+            resumeDashboard();
+            return;
+        }
+
+        BusinessHours hours;
+        long prewarm;
+        try {
+            Set<Integer> days = new HashSet<Integer>();
+            for (String day : sharedPref.getStringSet("pref_schedule_days",
+                                                      Collections.<String>emptySet())) {
+                days.add(Integer.valueOf(day));
+            }
+            hours = new BusinessHours(
+                days,
+                BusinessHours.parseTime(sharedPref.getString("pref_schedule_open", "")),
+                BusinessHours.parseTime(sharedPref.getString("pref_schedule_close", "")));
+            prewarm = Long.valueOf(sharedPref.getString("pref_schedule_prewarm", "0"));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Invalid schedule, stay awake: " + e.getMessage());
+            resumeDashboard();
+            return;
+        }
+
+        Calendar now = Calendar.getInstance();
+        boolean awake = hours.isAwake(now, prewarm);
+        if (awake) {
+            resumeDashboard();
+        } else {
+            suspendDashboard();
+        }
+        long next = hours.nextChange(now, prewarm);
+        if (next == -1) {
+            Log.i(TAG, "Business hours never change, no alarm scheduled");
+        } else {
+            Log.d(TAG, "Next schedule change in " +
+                  (next - now.getTimeInMillis()) / 1000 + " seconds");
+            intent.putExtra(DashboardScheduleReceiver.EXTRA_WAKE_UP, !awake);
+            PendingIntent alarm = PendingIntent.getBroadcast(
+                this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+            if (android.os.Build.VERSION.SDK_INT >= 19) {
+                alarmManager.setExact(AlarmManager.RTC_WAKEUP, next, alarm);
+            } else {
+                alarmManager.set(AlarmManager.RTC_WAKEUP, next, alarm);
+            }
+        }
+    }
+
+    /**
+     * Outside business hours: stop rendering and supervision and let
+     * the screen turn off.
+     */
+    private void suspendDashboard() {
+        if (mSuspended) {
+            return;
+        }
+        Log.i(TAG, "Outside business hours, suspend dashboard");
+        mSuspended = true;
+        findViewById(R.id.container).setKeepScreenOn(false);
+        getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        /* Turn the screen on when we are brought back by the alarm */
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_TURN_SCREEN_ON);
+        if (mWebView != null) {
+            mWebView.suspendSupervision();
+            mWebView.pauseTimers();
+            mWebView.onHide();
+        }
+    }
+
+    /**
+     * Back to business hours (or pre-warm period): resume rendering
+     * and reload the receiver.
+     */
+    private void resumeDashboard() {
+        if (!mSuspended) {
+            return;
+        }
+        Log.i(TAG, "Business hours, resume dashboard");
+        mSuspended = false;
+        /* FLAG_TURN_SCREEN_ON is cleared once the window is back */
+        findViewById(R.id.container).setKeepScreenOn(true);
+        setScreenOn();
+        if (mWebView != null) {
+            mWebView.resumeTimers();
+            mWebView.onShow();
+            mWebView.resumeSupervision();
+        }
+    }
+
+    @Override
+    public void onWindowFocusChanged(boolean hasFocus) {
+        super.onWindowFocusChanged(hasFocus);
+        if (hasFocus && !mSuspended) {
+            getWindow().clearFlags(WindowManager.LayoutParams.FLAG_TURN_SCREEN_ON);
+        }
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         if (item.getItemId() == R.id.action_settings) {
@@ -187,7 +310,8 @@ public class DashboardActivity extends Activity {
     protected void onResume() {
         super.onResume();
         setOrientation();
-        if (mWebView != null) {
+        applySchedule();
+        if (mWebView != null && !mSuspended) {
             mWebView.clearSslPreferences();
             mWebView.resumeTimers();
             mWebView.onShow();
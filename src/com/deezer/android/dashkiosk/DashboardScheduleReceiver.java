@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2016 Vincent Bernat <vbe@deezer.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.deezer.android.dashkiosk;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.PowerManager;
+import android.util.Log;
+
+/**
+ * Receive the alarm for the next business hours change and bring
+ * back the main activity. The alarm manager only keeps the device
+ * awake while `onReceive()` runs, so a wake lock is held until the
+ * activity is up. When waking up for business hours, the wake lock
+ * also turns the screen on.
+ */
+public class DashboardScheduleReceiver extends BroadcastReceiver {
+
+    private static final String TAG = "DashKiosk";
+    public static final String ACTION_SCHEDULE = "com.deezer.android.dashkiosk.SCHEDULE";
+    public static final String EXTRA_WAKE_UP = "wake_up";
+    private static final long WAKE_LOCK_TIMEOUT = 30000;
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void onReceive(Context context, Intent intent) {
+        boolean wakeUp = intent.getBooleanExtra(EXTRA_WAKE_UP, false);
+        Log.i(TAG, "Business hours change (wake up: " + wakeUp + ")");
+
+        PowerManager pm = (PowerManager)context.getSystemService(Context.POWER_SERVICE);
+        int flags = PowerManager.PARTIAL_WAKE_LOCK;
+        if (wakeUp) {
+            flags = PowerManager.SCREEN_BRIGHT_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP;
+        }
+        PowerManager.WakeLock wakeLock = pm.newWakeLock(flags, TAG);
+        wakeLock.acquire(WAKE_LOCK_TIMEOUT);
+
+        context.startActivity(new Intent(context, DashboardActivity.class)
+                              .setAction(ACTION_SCHEDULE)
+                              .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK));
+    }
+
+}
@@ -19,10 +19,14 @@ package com.deezer.android.dashkiosk;
 import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.graphics.Bitmap;
 import android.net.Uri;
+import android.net.TrafficStats;
 import android.net.http.SslError;
 import android.os.Handler;
 import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.util.AttributeSet;
@@ -37,16 +41,24 @@ import java.security.KeyStore.PrivateKeyEntry;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONTokener;
 import org.xwalk.core.ClientCertRequest;
 import org.xwalk.core.JavascriptInterface;
+import org.xwalk.core.XWalkGetBitmapCallback;
 import org.xwalk.core.XWalkJavascriptResult;
 import org.xwalk.core.XWalkPreferences;
 import org.xwalk.core.XWalkResourceClient;
 import org.xwalk.core.XWalkUIClient;
 import org.xwalk.core.XWalkView;
+import org.xwalk.core.XWalkWebResourceRequest;
+import org.xwalk.core.XWalkWebResourceResponse;
 
 import com.deezer.android.dashkiosk.DashboardWaitscreen;
 import com.deezer.android.dashkiosk.CertStore;
+import com.deezer.android.dashkiosk.FreezeDetector;
+import com.deezer.android.dashkiosk.ResourceWaterfall;
 
 /**
  * Fullscreen web view that is setup for kiosk mode: no interaction
@@ -57,9 +69,39 @@ public class DashboardWebView extends XWalkView {
     private static final String TAG = "DashKiosk";
     private static final int ALIVE = 1;
     private static final int DEADLINE = 2;
+    private static final int SNAPSHOT = 3;
+    private static final int SNAPSHOT_INTERVAL = 30000;
+    /* Return the URL of the largest visible frame of the receiver,
+     * which is the dashboard on screen, or the URL of the receiver
+     * itself when no dashboard is displayed. Frames nested inside a
+     * dashboard are not considered. */
+    private static final String SHOWN_DASHBOARD_JS =
+        "(function() {" +
+        "  var frames = document.getElementsByTagName('iframe');" +
+        "  var shown = null, area = 0;" +
+        "  for (var i = 0; i < frames.length; i++) {" +
+        "    var visible = true;" +
+        "    for (var e = frames[i]; e && visible; e = e.parentElement) {" +
+        "      var style = window.getComputedStyle(e);" +
+        "      visible = style.display != 'none' && style.visibility != 'hidden' &&" +
+        "                parseFloat(style.opacity) > 0;" +
+        "    }" +
+        "    var r = frames[i].getBoundingClientRect();" +
+        "    var w = Math.min(r.right, window.innerWidth) - Math.max(r.left, 0);" +
+        "    var h = Math.min(r.bottom, window.innerHeight) - Math.max(r.top, 0);" +
+        "    if (visible && frames[i].src && w > 0 && h > 0 && w * h >= area) {" +
+        "      shown = frames[i].src; area = w * h;" +
+        "    }" +
+        "  }" +
+        "  return shown || window.location.href;" +
+        "})()";
     private Context mContext;
     private final Handler mHandler = new HeartbeatHandler(this);
     private DashboardWaitscreen mWaitscreen = null;
+    private final ResourceWaterfall mWaterfall = new ResourceWaterfall();
+    private boolean mPageLoading = false;
+    private final FreezeDetector mFreezeDetector = new FreezeDetector();
+    private boolean mSuspended = false;
 
     public DashboardWebView(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -71,6 +113,7 @@ public class DashboardWebView extends XWalkView {
         hideWaitScreen();
         mHandler.removeMessages(ALIVE);
         mHandler.removeMessages(DEADLINE);
+        mHandler.removeMessages(SNAPSHOT);
         super.onDetachedFromWindow();
         Log.d(TAG, "Webview paused");
     }
@@ -82,7 +125,7 @@ public class DashboardWebView extends XWalkView {
         getSettings().setMediaPlaybackRequiresUserGesture(false);
         clearSslPreferences();
 
-        /* Don't show error dialogs */
+        /* Don't show error dialogs, record resource loads */
         setResourceClient(new XWalkResourceClient(this) {
                 @Override
                 public void onReceivedLoadError(XWalkView view,
@@ -90,6 +133,46 @@ public class DashboardWebView extends XWalkView {
                                                 String description,
                                                 String failingUrl) {
                     Log.w(TAG, "Load failed for " + failingUrl + ": " + description);
+                    mWaterfall.resourceFailed(failingUrl, SystemClock.elapsedRealtime(),
+                                              errorCode);
+                }
+
+                @Override
+                public XWalkWebResourceResponse shouldInterceptLoadRequest(
+                    XWalkView view, XWalkWebResourceRequest request) {
+                    String url = request.getUrl().toString();
+                    if (isDocument(request)) {
+                        mWaterfall.pageNavigated(url);
+                    }
+                    mWaterfall.resourceRequested(url, SystemClock.elapsedRealtime());
+                    return super.shouldInterceptLoadRequest(view, request);
+                }
+
+                @Override
+                public void onLoadStarted(XWalkView view, String url) {
+                    mWaterfall.resourceStarted(url, SystemClock.elapsedRealtime());
+                }
+
+                @Override
+                public void onLoadFinished(XWalkView view, String url) {
+                    mWaterfall.resourceFinished(url, SystemClock.elapsedRealtime());
+                }
+
+                @Override
+                public void onProgressChanged(XWalkView view, int progressInPercent) {
+                    if (progressInPercent < 100 && !mPageLoading) {
+                        /* Navigation to a new dashboard, labeled by isDocument() */
+                        mPageLoading = true;
+                        mWaterfall.pageStarted(null, SystemClock.elapsedRealtime(),
+                                               getReceivedBytes());
+                    } else if (progressInPercent == 100 && mPageLoading) {
+                        mPageLoading = false;
+                        ResourceWaterfall.PageLoad page = mWaterfall.pageFinished(
+                            SystemClock.elapsedRealtime(), getReceivedBytes());
+                        if (page != null) {
+                            Log.i(TAG, mWaterfall.summary(page, 5));
+                        }
+                    }
                 }
 
                 @Override
@@ -188,14 +271,44 @@ public class DashboardWebView extends XWalkView {
                 }
             }, "JSInterface");
 
-        displayWaitScreen();
-        loadReceiver();
-        mHandler.sendMessageDelayed(mHandler.obtainMessage(DEADLINE),
-                                    getTimeout());
+        if (!mSuspended) {
+            displayWaitScreen();
+            loadReceiver();
+            mHandler.sendMessageDelayed(mHandler.obtainMessage(DEADLINE),
+                                        getTimeout());
+            mHandler.sendMessageDelayed(mHandler.obtainMessage(SNAPSHOT),
+                                        SNAPSHOT_INTERVAL);
+        }
         super.onAttachedToWindow();
         Log.d(TAG, "Webview started");
     }
 
+    /**
+     * Stop supervising the receiver: no more reloads on missed
+     * heartbeats or frozen screen.
+     */
+    public void suspendSupervision() {
+        Log.i(TAG, "Suspend supervision");
+        mSuspended = true;
+        hideWaitScreen();
+        mHandler.removeMessages(DEADLINE);
+        mHandler.removeMessages(SNAPSHOT);
+    }
+
+    /**
+     * Resume supervision and reload the receiver to get a fresh page.
+     */
+    public void resumeSupervision() {
+        Log.i(TAG, "Resume supervision");
+        mSuspended = false;
+        mFreezeDetector.reset();
+        mHandler.removeMessages(DEADLINE);
+        mHandler.removeMessages(SNAPSHOT);
+        mHandler.sendMessage(mHandler.obtainMessage(DEADLINE));
+        mHandler.sendMessageDelayed(mHandler.obtainMessage(SNAPSHOT),
+                                    SNAPSHOT_INTERVAL);
+    }
+
     private void displayWaitScreen() {
         if (mWaitscreen != null && mWaitscreen.isShowing()) {
             return;
@@ -221,7 +334,7 @@ public class DashboardWebView extends XWalkView {
         @Override
         public void handleMessage(Message input) {
             DashboardWebView parent = mParent.get();
-            if (parent == null) {
+            if (parent == null || parent.mSuspended) {
                 return;
             }
             switch (input.what) {
@@ -239,13 +352,125 @@ public class DashboardWebView extends XWalkView {
                 parent.displayWaitScreen();
                 parent.stopLoading();
                 parent.loadReceiver();
+                parent.mFreezeDetector.reset();
                 sendMessageDelayed(obtainMessage(DEADLINE),
                                    parent.getTimeout());
                 break;
+            case SNAPSHOT:
+                // Check if the screen is frozen
+                parent.captureSnapshot();
+                sendMessageDelayed(obtainMessage(SNAPSHOT),
+                                   SNAPSHOT_INTERVAL);
+                break;
             }
         }
     }
 
+    /**
+     * Capture a snapshot of the rendered output to check if the
+     * screen is frozen. Only animated dashboards are checked: the
+     * receiver is first asked which dashboard is on screen. When
+     * frozen, or when snapshots cannot be captured anymore, trigger a
+     * reload.
+     */
+    private void captureSnapshot() {
+        SharedPreferences sharedPref = PreferenceManager
+            .getDefaultSharedPreferences(mContext);
+        if (!sharedPref.getBoolean("pref_freeze_detection", false)) {
+            mFreezeDetector.reset();
+            return;
+        }
+        final String patterns = sharedPref.getString("pref_freeze_urls", "");
+        final long window = Long.valueOf(sharedPref.getString("pref_freeze_timeout", null));
+        if (!mFreezeDetector.startCapture(SystemClock.elapsedRealtime())) {
+            if (mFreezeDetector.isCaptureStuck(SystemClock.elapsedRealtime(), window)) {
+                triggerFrozen("Snapshot capture did not complete for " + window + " ms");
+            }
+            return;
+        }
+        evaluateJavascript(SHOWN_DASHBOARD_JS, new ValueCallback<String>() {
+                @Override
+                public void onReceiveValue(String value) {
+                    String url = parseJavascriptString(value);
+                    if (!isAnimated(url, patterns)) {
+                        mFreezeDetector.reset();
+                        return;
+                    }
+                    captureBitmap(window);
+                }
+            });
+    }
+
+    private void captureBitmap(final long window) {
+        captureBitmapAsync(new XWalkGetBitmapCallback() {
+                @Override
+                public void onFinishGetBitmap(Bitmap bitmap, int response) {
+                    if (bitmap == null) {
+                        Log.w(TAG, "Unable to capture snapshot (response: " + response + ")");
+                        if (mFreezeDetector.captureFailed(SystemClock.elapsedRealtime(),
+                                                          window)) {
+                            triggerFrozen("Unable to capture snapshots for " + window + " ms");
+                        }
+                        return;
+                    }
+                    int width = FreezeDetector.GRID_WIDTH;
+                    int height = FreezeDetector.GRID_HEIGHT;
+                    Bitmap small = Bitmap.createScaledBitmap(bitmap, width, height, true);
+                    int[] pixels = new int[width * height];
+                    small.getPixels(pixels, 0, width, 0, 0, width, height);
+                    if (small != bitmap) {
+                        small.recycle();
+                    }
+                    bitmap.recycle();
+
+                    if (mFreezeDetector.update(FreezeDetector.hash(pixels, width, height),
+                                               SystemClock.elapsedRealtime(), window)) {
+                        triggerFrozen("Screen did not change for " + window + " ms");
+                    }
+                }
+            });
+    }
+
+    private void triggerFrozen(String reason) {
+        Log.i(TAG, reason + ". Trigger reload.");
+        mHandler.removeMessages(DEADLINE);
+        mHandler.sendMessage(mHandler.obtainMessage(DEADLINE));
+    }
+
+    /**
+     * Tell if the given URL is an animated dashboard. Patterns are a
+     * comma-separated list of substrings. An empty list matches no
+     * URL.
+     */
+    private static boolean isAnimated(String url, String patterns) {
+        if (url == null) {
+            return false;
+        }
+        for (String pattern : patterns.split(",")) {
+            pattern = pattern.trim();
+            if (!pattern.isEmpty() && url.contains(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decode a string returned by `evaluateJavascript()`, null if it
+     * is not a string.
+     */
+    private static String parseJavascriptString(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            Object decoded = new JSONTokener(value).nextValue();
+            return decoded instanceof String ? (String)decoded : null;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
     private void loadReceiver() {
         SharedPreferences sharedPref = PreferenceManager
             .getDefaultSharedPreferences(mContext);
@@ -253,9 +478,42 @@ public class DashboardWebView extends XWalkView {
         String appVer = getResources().getString(R.string.app_versionName);
         String url = pingURL + "?v=" + appVer;
         Log.d(TAG, "Loading " + url);
+        mPageLoading = true;
+        mWaterfall.pageStarted(url, SystemClock.elapsedRealtime(), getReceivedBytes());
         load(url, null);
     }
 
+    /**
+     * Tell if a request is for a document (the receiver or a
+     * dashboard in a frame) rather than a subresource. Navigations
+     * are the only requests accepting HTML. This is only used to
+     * label page loads: frames nested in a dashboard match too.
+     */
+    private static boolean isDocument(XWalkWebResourceRequest request) {
+        if (request.isForMainFrame()) {
+            return true;
+        }
+        Map<String, String> headers = request.getRequestHeaders();
+        if (headers == null) {
+            return false;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if ("Accept".equalsIgnoreCase(header.getKey()) &&
+                header.getValue() != null &&
+                header.getValue().startsWith("text/html")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Bytes received by the application, -1 if not available.
+     */
+    private static long getReceivedBytes() {
+        return TrafficStats.getUidRxBytes(Process.myUid());
+    }
+
     private int getTimeout() {
         SharedPreferences sharedPref = PreferenceManager
             .getDefaultSharedPreferences(mContext);
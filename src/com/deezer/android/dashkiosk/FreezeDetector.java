@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2016 Vincent Bernat <vbe@deezer.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.deezer.android.dashkiosk;
+
+import java.util.Arrays;
+
+/**
+ * Detect a frozen screen from periodic snapshots. Each snapshot is
+ * reduced to a difference hash (comparison of the brightness of
+ * adjacent cells of a small grid). If the hash does not change during
+ * the configured window, the screen is considered frozen. This only
+ * makes sense for dashboards which are expected to be animated.
+ *
+ * When the compositor hangs, capturing a snapshot may never complete
+ * or may keep failing. This is also considered as a frozen screen.
+ *
+ * This class does not depend on Android: snapshots are given as ARGB
+ * pixels.
+ */
+public class FreezeDetector {
+
+    /** Width of the grid used to compute the hash. */
+    public static final int GRID_WIDTH = 17;
+    /** Height of the grid used to compute the hash. */
+    public static final int GRID_HEIGHT = 16;
+
+    private long[] mLastHash = null;
+    private long mLastChange = -1;
+    private long mCaptureStarted = -1;
+    private long mFailingSince = -1;
+
+    /**
+     * Compute the hash of a snapshot. Pixels are ARGB, row by row. The
+     * snapshot is averaged into a grid of `GRID_WIDTH` by `GRID_HEIGHT`
+     * cells, so it is cheaper to provide a snapshot already scaled
+     * down to this size.
+     */
+    public static long[] hash(int[] pixels, int width, int height) {
+        if (width <= 0 || height <= 0 || pixels.length < width * height) {
+            throw new IllegalArgumentException("invalid snapshot size");
+        }
+        int[] grid = new int[GRID_WIDTH * GRID_HEIGHT];
+        for (int gy = 0; gy < GRID_HEIGHT; gy++) {
+            int y0 = gy * height / GRID_HEIGHT;
+            int y1 = Math.max(y0 + 1, (gy + 1) * height / GRID_HEIGHT);
+            for (int gx = 0; gx < GRID_WIDTH; gx++) {
+                int x0 = gx * width / GRID_WIDTH;
+                int x1 = Math.max(x0 + 1, (gx + 1) * width / GRID_WIDTH);
+                long sum = 0;
+                for (int y = y0; y < y1; y++) {
+                    for (int x = x0; x < x1; x++) {
+                        sum += luminance(pixels[y * width + x]);
+                    }
+                }
+                grid[gy * GRID_WIDTH + gx] = (int)(sum / ((y1 - y0) * (x1 - x0)));
+            }
+        }
+
+        int bits = (GRID_WIDTH - 1) * GRID_HEIGHT;
+        long[] hash = new long[(bits + 63) / 64];
+        int bit = 0;
+        for (int gy = 0; gy < GRID_HEIGHT; gy++) {
+            for (int gx = 0; gx < GRID_WIDTH - 1; gx++) {
+                if (grid[gy * GRID_WIDTH + gx] > grid[gy * GRID_WIDTH + gx + 1]) {
+                    hash[bit / 64] |= 1L << (bit % 64);
+                }
+                bit++;
+            }
+        }
+        return hash;
+    }
+
+    private static int luminance(int argb) {
+        int r = (argb >> 16) & 0xff;
+        int g = (argb >> 8) & 0xff;
+        int b = argb & 0xff;
+        return (r * 299 + g * 587 + b * 114) / 1000;
+    }
+
+    /**
+     * Record the start of a capture. Return false if the previous
+     * capture is still pending: no new capture should be started.
+     */
+    public synchronized boolean startCapture(long now) {
+        if (mCaptureStarted != -1) {
+            return false;
+        }
+        mCaptureStarted = now;
+        return true;
+    }
+
+    /**
+     * Tell if the pending capture did not complete for `window`
+     * milliseconds.
+     */
+    public synchronized boolean isCaptureStuck(long now, long window) {
+        return mCaptureStarted != -1 && now - mCaptureStarted >= window;
+    }
+
+    /**
+     * Record a capture which did not produce a snapshot. Return true
+     * if captures keep failing for `window` milliseconds.
+     */
+    public synchronized boolean captureFailed(long now, long window) {
+        mCaptureStarted = -1;
+        if (mFailingSince == -1) {
+            mFailingSince = now;
+        }
+        return now - mFailingSince >= window;
+    }
+
+    /**
+     * Record a new snapshot hash taken at `now` (in
+     * milliseconds). Return true if the screen did not change for
+     * `window` milliseconds.
+     */
+    public synchronized boolean update(long[] hash, long now, long window) {
+        mCaptureStarted = -1;
+        mFailingSince = -1;
+        if (mLastHash == null || !Arrays.equals(hash, mLastHash)) {
+            mLastHash = hash;
+            mLastChange = now;
+            return false;
+        }
+        return now - mLastChange >= window;
+    }
+
+    /**
+     * Forget previous snapshots, for example after a reload.
+     */
+    public synchronized void reset() {
+        mLastHash = null;
+        mLastChange = -1;
+        mCaptureStarted = -1;
+        mFailingSince = -1;
+    }
+
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2016 Vincent Bernat <vbe@deezer.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.deezer.android.dashkiosk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded in-memory waterfall of resource loads, grouped by page
+ * load. A page load is either a load of the receiver or a navigation
+ * to a new dashboard inside it. Requests made once the page is loaded
+ * (polling, heartbeats) are not recorded individually but aggregated
+ * by URL without query string. Times are in milliseconds and come
+ * from the caller, as well as received bytes, to keep this class
+ * independent from Android.
+ */
+public class ResourceWaterfall {
+
+    /** Number of page loads to keep. */
+    public static final int MAX_PAGES = 20;
+    /** Number of resources to keep for each page load. */
+    public static final int MAX_RESOURCES = 200;
+    /** Number of distinct URLs to keep for background requests. */
+    public static final int MAX_BACKGROUND = 50;
+    /** Number of loading resources to track before forgetting them. */
+    public static final int MAX_PENDING = 500;
+
+    /** Status of a resource still loading. */
+    public static final int PENDING = Integer.MIN_VALUE;
+    /** Status of a successfully loaded resource. */
+    public static final int OK = 0;
+
+    /**
+     * A single resource load. Status is either `PENDING`, `OK` or the
+     * error code received from Crosswalk.
+     */
+    public static class Resource {
+        public final String url;
+        public final long requested;
+        public long started = -1;
+        public long finished = -1;
+        public int status = PENDING;
+        /* Page load this resource belongs to, null for background requests */
+        private final PageLoad mPage;
+
+        Resource(String url, long requested, PageLoad page) {
+            this.url = url;
+            this.requested = requested;
+            this.mPage = page;
+        }
+
+        /**
+         * Duration from request to completion, -1 if unknown.
+         */
+        public long duration() {
+            if (finished == -1) {
+                return -1;
+            }
+            return finished - requested;
+        }
+    }
+
+    /**
+     * Requests made while no page was loading, aggregated by URL
+     * without query string.
+     */
+    public static class Background {
+        public final String url;
+        public int count = 0;
+        public int failed = 0;
+        public long totalDuration = 0;
+        public long maxDuration = 0;
+
+        Background(String url) {
+            this.url = url;
+        }
+    }
+
+    /**
+     * A page load with its resources. Received bytes are -1 when
+     * they cannot be measured. The label is null until the URL of the
+     * page is known.
+     */
+    public static class PageLoad {
+        public String label;
+        public final long started;
+        public long finished = -1;
+        public long bytes = -1;
+        public int dropped = 0;
+        private final long mRxStart;
+        private final List<Resource> mResources = new ArrayList<Resource>();
+
+        PageLoad(String label, long started, long rxBytes) {
+            this.label = label;
+            this.started = started;
+            this.mRxStart = rxBytes;
+        }
+
+        public List<Resource> getResources() {
+            return Collections.unmodifiableList(mResources);
+        }
+
+        /**
+         * Return the `count` slowest resources, finished or not.
+         */
+        public List<Resource> slowest(int count, final long now) {
+            List<Resource> sorted = new ArrayList<Resource>(mResources);
+            Collections.sort(sorted, new Comparator<Resource>() {
+                    @Override
+                    public int compare(Resource a, Resource b) {
+                        long da = a.finished == -1 ? now - a.requested : a.duration();
+                        long db = b.finished == -1 ? now - b.requested : b.duration();
+                        return Long.compare(db, da);
+                    }
+                });
+            return sorted.subList(0, Math.min(count, sorted.size()));
+        }
+    }
+
+    private final Deque<PageLoad> mPages = new ArrayDeque<PageLoad>();
+    private PageLoad mCurrent = null;
+    private String mNextLabel = null;
+    /* Resources still loading, by URL, oldest first */
+    private final Map<String, Deque<Resource>> mPending =
+        new HashMap<String, Deque<Resource>>();
+    private int mPendingCount = 0;
+    private final Map<String, Background> mBackground =
+        new LinkedHashMap<String, Background>();
+
+    /**
+     * Start a new page load. When the label is null, it is set by the
+     * next call to `pageNavigated()` (or by a previous one if the
+     * navigation was noticed before the page load started).
+     */
+    public synchronized PageLoad pageStarted(String label, long now, long rxBytes) {
+        if (label == null) {
+            label = mNextLabel;
+        }
+        mNextLabel = null;
+        /* Loads from the previous page are not tracked anymore */
+        mPending.clear();
+        mPendingCount = 0;
+        mCurrent = new PageLoad(label, now, rxBytes);
+        mPages.addLast(mCurrent);
+        while (mPages.size() > MAX_PAGES) {
+            mPages.removeFirst();
+        }
+        return mCurrent;
+    }
+
+    /**
+     * Notify a navigation to the given URL, used to label the
+     * current page load if not already labeled, or the next one.
+     */
+    public synchronized void pageNavigated(String url) {
+        if (mCurrent != null && mCurrent.finished == -1) {
+            if (mCurrent.label == null) {
+                mCurrent.label = url;
+            }
+        } else {
+            mNextLabel = url;
+        }
+    }
+
+    /**
+     * Mark the current page load as finished and return it. Return
+     * null if no page load is in progress.
+     */
+    public synchronized PageLoad pageFinished(long now, long rxBytes) {
+        PageLoad page = mCurrent;
+        if (page == null || page.finished != -1) {
+            return null;
+        }
+        page.finished = now;
+        if (rxBytes >= 0 && page.mRxStart >= 0) {
+            page.bytes = rxBytes - page.mRxStart;
+        }
+        return page;
+    }
+
+    /**
+     * Record a request for a resource. This may be called from any
+     * thread.
+     */
+    public synchronized void resourceRequested(String url, long now) {
+        track(url, now);
+    }
+
+    /**
+     * Record the start of a resource load. It is matched with the
+     * oldest request for the same URL not yet started.
+     */
+    public synchronized void resourceStarted(String url, long now) {
+        Deque<Resource> pending = mPending.get(url);
+        if (pending != null) {
+            for (Resource resource : pending) {
+                if (resource.started == -1) {
+                    resource.started = now;
+                    return;
+                }
+            }
+        }
+        Resource resource = track(url, now);
+        if (resource != null) {
+            resource.started = now;
+        }
+    }
+
+    public synchronized void resourceFinished(String url, long now) {
+        complete(url, now, OK);
+    }
+
+    public synchronized void resourceFailed(String url, long now, int errorCode) {
+        complete(url, now, errorCode);
+    }
+
+    /**
+     * Return a copy of the list of recorded page loads, oldest
+     * first. Page loads are still updated by the waterfall, so this
+     * is only meant for tests; use `summary()` otherwise.
+     */
+    synchronized List<PageLoad> getPages() {
+        return new ArrayList<PageLoad>(mPages);
+    }
+
+    /**
+     * Return a copy of the list of aggregated background requests,
+     * only meant for tests.
+     */
+    synchronized List<Background> getBackground() {
+        return new ArrayList<Background>(mBackground.values());
+    }
+
+    /**
+     * Start tracking a resource. It belongs to the current page load
+     * if it is still loading, otherwise, it is a background
+     * request. Return null if it cannot be tracked.
+     */
+    private Resource track(String url, long now) {
+        if (mPendingCount >= MAX_PENDING) {
+            /* Some loads never completed, forget them */
+            mPending.clear();
+            mPendingCount = 0;
+        }
+        PageLoad page = null;
+        if (mCurrent != null && mCurrent.finished == -1) {
+            page = mCurrent;
+            if (page.mResources.size() >= MAX_RESOURCES) {
+                page.dropped++;
+                return null;
+            }
+        }
+        Resource resource = new Resource(url, now, page);
+        if (page != null) {
+            page.mResources.add(resource);
+        }
+        Deque<Resource> pending = mPending.get(url);
+        if (pending == null) {
+            pending = new ArrayDeque<Resource>();
+            mPending.put(url, pending);
+        }
+        pending.addLast(resource);
+        mPendingCount++;
+        return resource;
+    }
+
+    private void complete(String url, long now, int status) {
+        Deque<Resource> pending = mPending.get(url);
+        if (pending == null) {
+            return;
+        }
+        Resource resource = pending.removeFirst();
+        if (pending.isEmpty()) {
+            mPending.remove(url);
+        }
+        mPendingCount--;
+        resource.finished = now;
+        resource.status = status;
+        if (resource.mPage == null) {
+            aggregate(resource);
+        }
+    }
+
+    private void aggregate(Resource resource) {
+        String url = stripQuery(resource.url);
+        Background background = mBackground.get(url);
+        if (background == null) {
+            if (mBackground.size() >= MAX_BACKGROUND) {
+                return;
+            }
+            background = new Background(url);
+            mBackground.put(url, background);
+        }
+        background.count++;
+        if (resource.status != OK) {
+            background.failed++;
+        }
+        background.totalDuration += resource.duration();
+        background.maxDuration = Math.max(background.maxDuration, resource.duration());
+    }
+
+    private static String stripQuery(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query != -1) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment != -1 && fragment < end) {
+            end = fragment;
+        }
+        return url.substring(0, end);
+    }
+
+    /**
+     * Summarize a page load: number of resources, received bytes and
+     * slowest resources.
+     */
+    public synchronized String summary(PageLoad page, int slowest) {
+        long end = page.finished == -1 ? page.started : page.finished;
+        StringBuilder sb = new StringBuilder();
+        sb.append("Page load of ").append(page.label == null ? "unknown page" : page.label)
+            .append(": ").append(page.mResources.size()).append(" resources");
+        if (page.dropped > 0) {
+            sb.append(" (+").append(page.dropped).append(" not recorded)");
+        }
+        if (page.finished != -1) {
+            sb.append(" in ").append(page.finished - page.started).append(" ms");
+        }
+        if (page.bytes >= 0) {
+            sb.append(", ").append(page.bytes / 1024).append(" KiB received");
+        }
+        for (Resource resource : page.slowest(slowest, end)) {
+            sb.append("\n  ");
+            if (resource.finished == -1) {
+                sb.append("unfinished");
+            } else {
+                sb.append(resource.duration()).append(" ms");
+            }
+            if (resource.status != OK && resource.status != PENDING) {
+                sb.append(" (error ").append(resource.status).append(")");
+            }
+            sb.append(" ").append(resource.url);
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2016 Vincent Bernat <vbe@deezer.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.deezer.android.dashkiosk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TimeZone;
+import org.junit.Test;
+
+public class BusinessHoursTest {
+
+    private static final TimeZone PARIS = TimeZone.getTimeZone("Europe/Paris");
+    private static final long TEN_MINUTES = 10 * 60 * 1000;
+    private static final long THIRTY_MINUTES = 30 * 60 * 1000;
+
+    private static final Set<Integer> WEEKDAYS = new HashSet<Integer>(Arrays.asList(
+        Calendar.MONDAY, Calendar.TUESDAY, Calendar.WEDNESDAY,
+        Calendar.THURSDAY, Calendar.FRIDAY));
+    private static final Set<Integer> ALL_DAYS = new HashSet<Integer>(Arrays.asList(
+        Calendar.SUNDAY, Calendar.MONDAY, Calendar.TUESDAY, Calendar.WEDNESDAY,
+        Calendar.THURSDAY, Calendar.FRIDAY, Calendar.SATURDAY));
+
+    /**
+     * Local time in Paris. October 2026: Friday 16th, Saturday 17th,
+     * Sunday 18th, Monday 19th.
+     */
+    private static Calendar at(int year, int month, int day, int hour, int minute) {
+        Calendar when = Calendar.getInstance(PARIS);
+        when.clear();
+        when.set(year, month, day, hour, minute, 0);
+        return when;
+    }
+
+    private static Calendar oct(int day, int hour, int minute) {
+        return at(2026, Calendar.OCTOBER, day, hour, minute);
+    }
+
+    private static BusinessHours hours(Set<Integer> days, String open, String close) {
+        return new BusinessHours(days,
+                                 BusinessHours.parseTime(open),
+                                 BusinessHours.parseTime(close));
+    }
+
+    @Test
+    public void parseTime() {
+        assertEquals(0, BusinessHours.parseTime("00:00"));
+        assertEquals(8 * 60 + 30, BusinessHours.parseTime(" 08:30 "));
+        assertEquals(24 * 60, BusinessHours.parseTime("24:00"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseTimeRejectsAfterMidnight() {
+        BusinessHours.parseTime("24:01");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseTimeRejectsGarbage() {
+        BusinessHours.parseTime("8h30");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noOpeningDayIsRejected() {
+        new BusinessHours(Collections.<Integer>emptySet(), 8 * 60, 19 * 60);
+    }
+
+    @Test
+    public void isOpenDuringDay() {
+        BusinessHours hours = hours(WEEKDAYS, "08:00", "19:00");
+        assertFalse(hours.isOpen(oct(19, 7, 59)));
+        assertTrue(hours.isOpen(oct(19, 8, 0)));
+        assertTrue(hours.isOpen(oct(19, 18, 59)));
+        assertFalse(hours.isOpen(oct(19, 19, 0)));
+        assertFalse(hours.isOpen(oct(18, 12, 0)));
+    }
+
+    @Test
+    public void isOpenUntilMidnight() {
+        BusinessHours hours = hours(WEEKDAYS, "08:00", "24:00");
+        assertTrue(hours.isOpen(oct(16, 23, 59)));
+        assertFalse(hours.isOpen(oct(17, 0, 0)));
+    }
+
+    @Test
+    public void isOpenOverMidnight() {
+        BusinessHours hours = hours(WEEKDAYS, "22:00", "06:00");
+        assertTrue(hours.isOpen(oct(16, 22, 0)));
+        /* Friday night goes on Saturday morning */
+        assertTrue(hours.isOpen(oct(17, 5, 59)));
+        assertFalse(hours.isOpen(oct(17, 6, 0)));
+        assertFalse(hours.isOpen(oct(17, 22, 0)));
+        /* Nothing on Sunday night, so Monday morning is closed */
+        assertFalse(hours.isOpen(oct(19, 3, 0)));
+    }
+
+    @Test
+    public void isAwakeBeforeOpening() {
+        BusinessHours hours = hours(WEEKDAYS, "08:00", "19:00");
+        assertFalse(hours.isAwake(oct(19, 7, 49), TEN_MINUTES));
+        assertTrue(hours.isAwake(oct(19, 7, 50), TEN_MINUTES));
+        assertTrue(hours.isAwake(oct(19, 18, 59), TEN_MINUTES));
+        assertFalse(hours.isAwake(oct(19, 19, 0), TEN_MINUTES));
+    }
+
+    @Test
+    public void isAwakeBeforeOpeningOnPreviousDay() {
+        BusinessHours hours = hours(WEEKDAYS, "00:10", "12:00");
+        assertFalse(hours.isAwake(oct(18, 23, 39), THIRTY_MINUTES));
+        assertTrue(hours.isAwake(oct(18, 23, 40), THIRTY_MINUTES));
+    }
+
+    @Test
+    public void nextChangeToClosing() {
+        BusinessHours hours = hours(WEEKDAYS, "08:00", "19:00");
+        assertEquals(oct(19, 19, 0).getTimeInMillis(),
+                     hours.nextChange(oct(19, 12, 34), TEN_MINUTES));
+    }
+
+    @Test
+    public void nextChangeOverWeekend() {
+        BusinessHours hours = hours(WEEKDAYS, "08:00", "19:00");
+        assertEquals(oct(19, 7, 50).getTimeInMillis(),
+                     hours.nextChange(oct(16, 19, 0), TEN_MINUTES));
+    }
+
+    @Test
+    public void nextChangeWithPrewarmOnPreviousDay() {
+        BusinessHours hours = hours(WEEKDAYS, "00:10", "12:00");
+        assertEquals(oct(18, 23, 40).getTimeInMillis(),
+                     hours.nextChange(oct(17, 12, 0), THIRTY_MINUTES));
+    }
+
+    @Test
+    public void nextChangeOverMidnight() {
+        BusinessHours hours = hours(WEEKDAYS, "22:00", "06:00");
+        assertEquals(oct(17, 6, 0).getTimeInMillis(),
+                     hours.nextChange(oct(17, 3, 0), 0));
+        assertEquals(oct(19, 22, 0).getTimeInMillis(),
+                     hours.nextChange(oct(17, 6, 0), 0));
+    }
+
+    @Test
+    public void nextChangeSkipsContiguousDays() {
+        /* Closing at midnight and opening at midnight the next day */
+        BusinessHours hours = hours(WEEKDAYS, "00:00", "24:00");
+        assertEquals(oct(17, 0, 0).getTimeInMillis(),
+                     hours.nextChange(oct(12, 10, 0), 0));
+    }
+
+    @Test
+    public void nextChangeNeverWhenAlwaysOpen() {
+        BusinessHours hours = hours(ALL_DAYS, "00:00", "24:00");
+        assertEquals(-1, hours.nextChange(oct(17, 10, 0), TEN_MINUTES));
+    }
+
+    @Test
+    public void nextChangeAcrossDaylightSavingTime() {
+        /* Clocks go back one hour in Paris on Sunday, October 25th 2026 */
+        BusinessHours hours = hours(ALL_DAYS, "08:00", "19:00");
+        long next = hours.nextChange(oct(24, 19, 0), TEN_MINUTES);
+        assertEquals(oct(25, 7, 50).getTimeInMillis(), next);
+        assertEquals(14 * 3600 * 1000L - TEN_MINUTES,
+                     next - oct(24, 19, 0).getTimeInMillis());
+
+        /* Clocks go forward one hour on Sunday, March 29th 2026 */
+        next = hours.nextChange(at(2026, Calendar.MARCH, 28, 19, 0), TEN_MINUTES);
+        assertEquals(at(2026, Calendar.MARCH, 29, 7, 50).getTimeInMillis(), next);
+        assertEquals(12 * 3600 * 1000L - TEN_MINUTES,
+                     next - at(2026, Calendar.MARCH, 28, 19, 0).getTimeInMillis());
+    }
+
+}
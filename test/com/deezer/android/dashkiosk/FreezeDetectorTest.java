@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2016 Vincent Bernat <vbe@deezer.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.deezer.android.dashkiosk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class FreezeDetectorTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 180;
+    private static final long WINDOW = 60000;
+
+    /**
+     * Synthetic frame: horizontal gradient, brighter to the right.
+     */
+    private static int[] gradient() {
+        int[] frame = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int v = x * 255 / WIDTH;
+                frame[y * WIDTH + x] = 0xff000000 | (v << 16) | (v << 8) | v;
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Paint a white rectangle over a frame.
+     */
+    private static int[] withBox(int[] frame, int x0, int y0, int size) {
+        int[] result = Arrays.copyOf(frame, frame.length);
+        for (int y = y0; y < y0 + size; y++) {
+            for (int x = x0; x < x0 + size; x++) {
+                result[y * WIDTH + x] = 0xffffffff;
+            }
+        }
+        return result;
+    }
+
+    private static long[] hash(int[] frame) {
+        return FreezeDetector.hash(frame, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void identicalFramesHaveSameHash() {
+        assertArrayEquals(hash(gradient()), hash(gradient()));
+    }
+
+    @Test
+    public void slightlyChangedFrameHasSameHash() {
+        int[] frame = gradient();
+        frame[0] ^= 0x01;
+        assertArrayEquals(hash(gradient()), hash(frame));
+    }
+
+    @Test
+    public void stronglyChangedFrameHasDifferentHash() {
+        assertFalse(Arrays.equals(hash(gradient()),
+                                  hash(withBox(gradient(), 10, 10, 60))));
+    }
+
+    @Test
+    public void prescaledFrameIsAccepted() {
+        int[] frame = new int[FreezeDetector.GRID_WIDTH * FreezeDetector.GRID_HEIGHT];
+        FreezeDetector.hash(frame, FreezeDetector.GRID_WIDTH, FreezeDetector.GRID_HEIGHT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidFrameIsRejected() {
+        FreezeDetector.hash(new int[10], WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void frozenOnlyAfterWindow() {
+        FreezeDetector detector = new FreezeDetector();
+        assertFalse(detector.update(hash(gradient()), 0, WINDOW));
+        assertFalse(detector.update(hash(gradient()), WINDOW - 1, WINDOW));
+        assertTrue(detector.update(hash(gradient()), WINDOW, WINDOW));
+    }
+
+    @Test
+    public void changeRestartsWindow() {
+        FreezeDetector detector = new FreezeDetector();
+        int[] moved = withBox(gradient(), 10, 10, 60);
+        assertFalse(detector.update(hash(gradient()), 0, WINDOW));
+        assertFalse(detector.update(hash(moved), WINDOW - 1, WINDOW));
+        assertFalse(detector.update(hash(moved), 2 * WINDOW - 2, WINDOW));
+        assertTrue(detector.update(hash(moved), 2 * WINDOW - 1, WINDOW));
+    }
+
+    @Test
+    public void resetForgetsPreviousFrames() {
+        FreezeDetector detector = new FreezeDetector();
+        assertFalse(detector.update(hash(gradient()), 0, WINDOW));
+        detector.reset();
+        assertFalse(detector.update(hash(gradient()), WINDOW, WINDOW));
+        assertTrue(detector.update(hash(gradient()), 2 * WINDOW, WINDOW));
+    }
+
+    @Test
+    public void pendingCaptureIsStuckAfterWindow() {
+        FreezeDetector detector = new FreezeDetector();
+        assertTrue(detector.startCapture(0));
+        assertFalse(detector.startCapture(1000));
+        assertFalse(detector.isCaptureStuck(WINDOW - 1, WINDOW));
+        assertTrue(detector.isCaptureStuck(WINDOW, WINDOW));
+        detector.update(hash(gradient()), WINDOW, WINDOW);
+        assertFalse(detector.isCaptureStuck(2 * WINDOW, WINDOW));
+        assertTrue(detector.startCapture(2 * WINDOW));
+    }
+
+    @Test
+    public void failingCapturesAreFrozenAfterWindow() {
+        FreezeDetector detector = new FreezeDetector();
+        assertTrue(detector.startCapture(0));
+        assertFalse(detector.captureFailed(0, WINDOW));
+        assertTrue(detector.startCapture(WINDOW / 2));
+        assertFalse(detector.captureFailed(WINDOW / 2, WINDOW));
+        assertTrue(detector.startCapture(WINDOW));
+        assertTrue(detector.captureFailed(WINDOW, WINDOW));
+    }
+
+    @Test
+    public void successfulCaptureClearsFailures() {
+        FreezeDetector detector = new FreezeDetector();
+        assertFalse(detector.captureFailed(0, WINDOW));
+        assertFalse(detector.update(hash(gradient()), WINDOW / 2, WINDOW));
+        assertFalse(detector.captureFailed(WINDOW, WINDOW));
+        detector.reset();
+        assertFalse(detector.captureFailed(2 * WINDOW, WINDOW));
+    }
+
+}
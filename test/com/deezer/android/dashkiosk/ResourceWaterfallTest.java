@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2016 Vincent Bernat <vbe@deezer.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.deezer.android.dashkiosk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+public class ResourceWaterfallTest {
+
+    private static final String RECEIVER = "https://dashkiosk.example.com/receiver";
+    private static final String DASHBOARD = "https://grafana.example.com/d/1";
+    private static final String SCRIPT = "https://grafana.example.com/app.js";
+
+    /**
+     * Waterfall with a finished page load, so that new requests are
+     * background requests.
+     */
+    private static ResourceWaterfall idle() {
+        ResourceWaterfall waterfall = new ResourceWaterfall();
+        waterfall.pageStarted(RECEIVER, 0, -1);
+        waterfall.pageFinished(10, -1);
+        return waterfall;
+    }
+
+    private static ResourceWaterfall.Background background(ResourceWaterfall waterfall,
+                                                           String url) {
+        for (ResourceWaterfall.Background background : waterfall.getBackground()) {
+            if (background.url.equals(url)) {
+                return background;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void resourceLifecycle() {
+        ResourceWaterfall waterfall = new ResourceWaterfall();
+        ResourceWaterfall.PageLoad page = waterfall.pageStarted(RECEIVER, 0, 1000);
+        waterfall.resourceRequested(SCRIPT, 5);
+        waterfall.resourceStarted(SCRIPT, 7);
+        waterfall.resourceFinished(SCRIPT, 20);
+        assertSame(page, waterfall.pageFinished(30, 5096));
+        assertNull(waterfall.pageFinished(40, 6000));
+
+        assertEquals(1, page.getResources().size());
+        ResourceWaterfall.Resource resource = page.getResources().get(0);
+        assertEquals(5, resource.requested);
+        assertEquals(7, resource.started);
+        assertEquals(20, resource.finished);
+        assertEquals(ResourceWaterfall.OK, resource.status);
+        assertEquals(15, resource.duration());
+        assertEquals(30, page.finished);
+        assertEquals(4096, page.bytes);
+    }
+
+    @Test
+    public void unknownReceivedBytes() {
+        ResourceWaterfall waterfall = new ResourceWaterfall();
+        ResourceWaterfall.PageLoad page = waterfall.pageStarted(RECEIVER, 0, -1);
+        waterfall.pageFinished(30, 5096);
+        assertEquals(-1, page.bytes);
+    }
+
+    @Test
+    public void loadStartedWithoutRequest() {
+        ResourceWaterfall waterfall = new ResourceWaterfall();
+        ResourceWaterfall.PageLoad page = waterfall.pageStarted(RECEIVER, 0, -1);
+        waterfall.resourceStarted(SCRIPT, 7);
+        waterfall.resourceFailed(SCRIPT, 9, -2);
+        ResourceWaterfall.Resource resource = page.getResources().get(0);
+        assertEquals(7, resource.requested);
+        assertEquals(7, resource.started);
+        assertEquals(-2, resource.status);
+    }
+
+    @Test
+    public void concurrentLoadsOfSameUrlAreMatchedInOrder() {
+        ResourceWaterfall waterfall = new ResourceWaterfall();
+        ResourceWaterfall.PageLoad page = waterfall.pageStarted(RECEIVER, 0, -1);
+        waterfall.resourceRequested(SCRIPT, 10);
+        waterfall.resourceRequested(SCRIPT, 20);
+        waterfall.resourceStarted(SCRIPT, 11);
+        waterfall.resourceStarted(SCRIPT, 21);
+        waterfall.resourceFinished(SCRIPT, 50);
+        waterfall.resourceFailed(SCRIPT, 60, -6);
+
+        List<ResourceWaterfall.Resource> resources = page.getResources();
+        assertEquals(2, resources.size());
+        assertEquals(11, resources.get(0).started);
+        assertEquals(50, resources.get(0).finished);
+        assertEquals(ResourceWaterfall.OK, resources.get(0).status);
+        assertEquals(21, resources.get(1).started);
+        assertEquals(60, resources.get(1).finished);
+        assertEquals(-6, resources.get(1).status);
+
+        /* Nothing left to complete */
+        waterfall.resourceFinished(SCRIPT, 70);
+        assertEquals(2, page.getResources().size());
+        assertEquals(60, resources.get(1).finished);
+    }
+
+    @Test
+    public void resourcesAreCappedPerPage() {
+        ResourceWaterfall waterfall = new ResourceWaterfall();
+        ResourceWaterfall.PageLoad page = waterfall.pageStarted(RECEIVER, 0, -1);
+        for (int i = 0; i < ResourceWaterfall.MAX_RESOURCES + 5; i++) {
+            waterfall.resourceRequested(SCRIPT + "?" + i, i);
+        }
+        assertEquals(ResourceWaterfall.MAX_RESOURCES, page.getResources().size());
+        assertEquals(5, page.dropped);
+        assertTrue(waterfall.summary(page, 1).contains("(+5 not recorded)"));
+    }
+
+    @Test
+    public void pagesAreCapped() {
+        ResourceWaterfall waterfall = new ResourceWaterfall();
+        for (int i = 0; i < ResourceWaterfall.MAX_PAGES + 3; i++) {
+            waterfall.pageStarted(RECEIVER + "?" + i, i, -1);
+        }
+        List<ResourceWaterfall.PageLoad> pages = waterfall.getPages();
+        assertEquals(ResourceWaterfall.MAX_PAGES, pages.size());
+        assertEquals(RECEIVER + "?3", pages.get(0).label);
+    }
+
+    @Test
+    public void newPageForgetsPendingLoads() {
+        ResourceWaterfall waterfall = new ResourceWaterfall();
+        ResourceWaterfall.PageLoad first = waterfall.pageStarted(RECEIVER, 0, -1);
+        waterfall.resourceRequested(SCRIPT, 5);
+        ResourceWaterfall.PageLoad second = waterfall.pageStarted(RECEIVER, 10, -1);
+        waterfall.resourceFinished(SCRIPT, 20);
+        assertEquals(-1, first.getResources().get(0).finished);
+        assertEquals(0, second.getResources().size());
+    }
+
+    @Test
+    public void pendingLoadsAreCapped() {
+        ResourceWaterfall waterfall = idle();
+        for (int i = 0; i < ResourceWaterfall.MAX_PENDING; i++) {
+            waterfall.resourceRequested(SCRIPT + "?" + i, 100);
+        }
+        /* Pending loads are forgotten to track this one */
+        waterfall.resourceRequested(DASHBOARD, 100);
+        waterfall.resourceFinished(SCRIPT + "?0", 200);
+        assertNull(background(waterfall, SCRIPT));
+        waterfall.resourceFinished(DASHBOARD, 200);
+        assertEquals(1, background(waterfall, DASHBOARD).count);
+    }
+
+    @Test
+    public void backgroundRequestsAreAggregated() {
+        ResourceWaterfall waterfall = idle();
+        waterfall.resourceRequested(SCRIPT + "?t=1", 100);
+        waterfall.resourceFinished(SCRIPT + "?t=1", 110);
+        waterfall.resourceRequested(SCRIPT + "?t=2#top", 200);
+        waterfall.resourceFailed(SCRIPT + "?t=2#top", 250, -2);
+        waterfall.resourceRequested(SCRIPT + "#top", 300);
+        waterfall.resourceFinished(SCRIPT + "#top", 320);
+        /* Not completed yet */
+        waterfall.resourceRequested(SCRIPT, 400);
+
+        assertEquals(1, waterfall.getBackground().size());
+        ResourceWaterfall.Background background = background(waterfall, SCRIPT);
+        assertEquals(3, background.count);
+        assertEquals(1, background.failed);
+        assertEquals(80, background.totalDuration);
+        assertEquals(50, background.maxDuration);
+        for (ResourceWaterfall.PageLoad page : waterfall.getPages()) {
+            assertEquals(0, page.getResources().size());
+        }
+    }
+
+    @Test
+    public void backgroundUrlsAreCapped() {
+        ResourceWaterfall waterfall = idle();
+        for (int i = 0; i < ResourceWaterfall.MAX_BACKGROUND + 5; i++) {
+            String url = SCRIPT + "/" + i;
+            waterfall.resourceRequested(url, 100);
+            waterfall.resourceFinished(url, 110);
+        }
+        assertEquals(ResourceWaterfall.MAX_BACKGROUND, waterfall.getBackground().size());
+        assertNull(background(waterfall, SCRIPT + "/" + ResourceWaterfall.MAX_BACKGROUND));
+
+        /* Already known URLs are still counted */
+        waterfall.resourceRequested(SCRIPT + "/0?again", 200);
+        waterfall.resourceFinished(SCRIPT + "/0?again", 210);
+        assertEquals(2, background(waterfall, SCRIPT + "/0").count);
+    }
+
+    @Test
+    public void pageLabeledByNavigation() {
+        ResourceWaterfall waterfall = idle();
+        ResourceWaterfall.PageLoad page = waterfall.pageStarted(null, 100, -1);
+        assertNull(page.label);
+        waterfall.pageNavigated(DASHBOARD);
+        /* Only the first navigation labels the page */
+        waterfall.pageNavigated(DASHBOARD + "/embedded");
+        assertEquals(DASHBOARD, page.label);
+        assertTrue(waterfall.summary(page, 0).startsWith("Page load of " + DASHBOARD + ":"));
+    }
+
+    @Test
+    public void navigationBeforePageStart() {
+        ResourceWaterfall waterfall = idle();
+        waterfall.pageNavigated(DASHBOARD);
+        ResourceWaterfall.PageLoad page = waterfall.pageStarted(null, 100, -1);
+        assertEquals(DASHBOARD, page.label);
+
+        /* The pending label is consumed by the page load */
+        waterfall.pageFinished(200, -1);
+        page = waterfall.pageStarted(null, 300, -1);
+        assertNull(page.label);
+        assertTrue(waterfall.summary(page, 0).startsWith("Page load of unknown page:"));
+    }
+
+    @Test
+    public void explicitLabelIsKept() {
+        ResourceWaterfall waterfall = idle();
+        waterfall.pageNavigated(DASHBOARD);
+        ResourceWaterfall.PageLoad page = waterfall.pageStarted(RECEIVER, 100, -1);
+        waterfall.pageNavigated(DASHBOARD);
+        assertEquals(RECEIVER, page.label);
+    }
+
+    @Test
+    public void summaryListsSlowestResources() {
+        ResourceWaterfall waterfall = new ResourceWaterfall();
+        ResourceWaterfall.PageLoad page = waterfall.pageStarted(RECEIVER, 0, -1);
+        waterfall.resourceRequested(SCRIPT, 0);
+        waterfall.resourceFinished(SCRIPT, 30);
+        waterfall.resourceRequested(DASHBOARD, 0);
+        waterfall.resourceFailed(DASHBOARD, 80, -2);
+        waterfall.resourceRequested(RECEIVER + "/slow.css", 0);
+        waterfall.pageFinished(100, -1);
+
+        assertEquals("Page load of " + RECEIVER + ": 3 resources in 100 ms\n" +
+                     "  unfinished " + RECEIVER + "/slow.css\n" +
+                     "  80 ms (error -2) " + DASHBOARD,
+                     waterfall.summary(page, 2));
+    }
+
+}
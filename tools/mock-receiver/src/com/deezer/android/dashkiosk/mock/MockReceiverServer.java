@@ -0,0 +1,687 @@
+/*
+ * Copyright (c) 2016 Vincent Bernat <vbe@deezer.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.deezer.android.dashkiosk.mock;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Stand-in for a Dashkiosk server, for local testing of the Android
+ * application. It serves a minimal receiver page which calls
+ * `JSInterface.ready()` on each successful heartbeat and can inject
+ * faults (latency, dropped heartbeats, 5xx errors, slow assets). It
+ * can also serve over TLS and require a client certificate signed by
+ * the test CA in `certificates/` (expiration dates are ignored).
+ *
+ * Faults can be changed at runtime through `/_control` and per-client
+ * request rates are available through `/_stats`.
+ */
+public class MockReceiverServer {
+
+    private static final long REPORT_INTERVAL = 10000;
+
+    /* Fault injection settings, can be modified at runtime */
+    private volatile long mLatency = 0;
+    private volatile double mDropHeartbeats = 0;
+    private volatile double mErrors = 0;
+    private volatile long mSlowAssets = 0;
+    private volatile int mAssetSize = 100 * 1024;
+    private volatile int mAssetCache = 0;
+    private volatile long mHeartbeat = 5000;
+
+    private final Random mRandom = new Random();
+    private final ConcurrentHashMap<String, ClientStats> mClients =
+        new ConcurrentHashMap<String, ClientStats>();
+
+    /**
+     * Request counters for a single client.
+     */
+    private static class ClientStats {
+        final AtomicLong total = new AtomicLong();
+        final AtomicLong page = new AtomicLong();
+        final AtomicLong heartbeat = new AtomicLong();
+        final AtomicLong asset = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        /* Updated by the reporter thread, read by handlers */
+        volatile long lastTotal = 0;
+        volatile long lastReport = System.currentTimeMillis();
+        volatile double rate = 0;
+    }
+
+    /**
+     * Base handler: record statistics and inject latency and errors
+     * before handing the request to the real handler.
+     */
+    private abstract class FaultyHandler implements HttpHandler {
+        private final String mKind;
+
+        FaultyHandler(String kind) {
+            mKind = kind;
+        }
+
+        abstract void serve(HttpExchange exchange, ClientStats stats) throws IOException;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            ClientStats stats = getStats(exchange);
+            stats.total.incrementAndGet();
+            if (mKind.equals("page")) {
+                stats.page.incrementAndGet();
+            } else if (mKind.equals("heartbeat")) {
+                stats.heartbeat.incrementAndGet();
+            } else if (mKind.equals("asset")) {
+                stats.asset.incrementAndGet();
+            }
+            try {
+                sleep(mLatency);
+                if (roll(mErrors)) {
+                    stats.errors.incrementAndGet();
+                    send(exchange, stats, 503, "text/plain",
+                         "Injected error\n".getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                serve(exchange, stats);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private ClientStats getStats(HttpExchange exchange) {
+        String client = exchange.getRemoteAddress().getAddress().getHostAddress();
+        ClientStats stats = mClients.get(client);
+        if (stats == null) {
+            ClientStats previous = mClients.putIfAbsent(client, new ClientStats());
+            if (previous == null) {
+                log("New client " + client);
+            }
+            stats = mClients.get(client);
+        }
+        return stats;
+    }
+
+    private boolean roll(double probability) {
+        synchronized (mRandom) {
+            return probability > 0 && mRandom.nextDouble() < probability;
+        }
+    }
+
+    private static void sleep(long delay) {
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void send(HttpExchange exchange, ClientStats stats,
+                             int code, String type, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+        if (stats != null) {
+            stats.bytes.addAndGet(body.length);
+        }
+    }
+
+    private static void log(String message) {
+        System.out.println(String.format("%tT %s", System.currentTimeMillis(), message));
+    }
+
+    /**
+     * Receiver page. Like the real receiver, it calls
+     * `JSInterface.ready()` periodically, but only when the heartbeat
+     * request succeeded.
+     */
+    private byte[] receiverPage() {
+        String page = "<!DOCTYPE html>\n"
+            + "<html>\n<head>\n"
+            + "<meta charset=\"utf-8\">\n"
+            + "<title>Dashkiosk mock receiver</title>\n"
+            + "<link rel=\"stylesheet\" href=\"/assets/style.css\">\n"
+            + "<script src=\"/assets/payload.js\"></script>\n"
+            + "</head>\n<body>\n"
+            + "<h1>Dashkiosk mock receiver</h1>\n"
+            + "<p id=\"status\">Waiting for first heartbeat</p>\n"
+            + "<script>\n"
+            + "(function() {\n"
+            + "  var iface = window.JSInterface;\n"
+            + "  var period = " + mHeartbeat + ";\n"
+            + "  if (iface) {\n"
+            + "    period = Math.min(period, iface.timeout() / 3);\n"
+            + "  }\n"
+            + "  var status = document.getElementById('status');\n"
+            + "  function beat() {\n"
+            + "    var xhr = new XMLHttpRequest();\n"
+            + "    xhr.open('GET', '/heartbeat?t=' + Date.now(), true);\n"
+            + "    xhr.onload = function() {\n"
+            + "      if (xhr.status == 200) {\n"
+            + "        status.textContent = 'Last heartbeat: ' + new Date();\n"
+            + "        if (iface) iface.ready();\n"
+            + "      } else if (iface) {\n"
+            + "        iface.log('heartbeat status ' + xhr.status);\n"
+            + "      }\n"
+            + "    };\n"
+            + "    xhr.send();\n"
+            + "  }\n"
+            + "  beat();\n"
+            + "  setInterval(beat, period);\n"
+            + "})();\n"
+            + "</script>\n"
+            + "</body>\n</html>\n";
+        return page.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> params = new HashMap<String, String>();
+        if (query == null) {
+            return params;
+        }
+        for (String param : query.split("&")) {
+            int eq = param.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"),
+                           URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    private static long parseLong(String value, long min) {
+        long result = Long.parseLong(value);
+        if (result < min) {
+            throw new IllegalArgumentException("`" + value + "` should be at least " + min);
+        }
+        return result;
+    }
+
+    private static int parseInt(String value, int min) {
+        return (int)Math.min(parseLong(value, min), Integer.MAX_VALUE);
+    }
+
+    private static double parseRatio(String value) {
+        double result = Double.parseDouble(value);
+        if (!(result >= 0 && result <= 1)) {
+            throw new IllegalArgumentException("`" + value + "` should be between 0 and 1");
+        }
+        return result;
+    }
+
+    /**
+     * Check and, if `apply` is true, apply a setting given as a
+     * command-line option or through `/_control`. Return false if the
+     * setting is unknown and throw an `IllegalArgumentException` if
+     * the value is invalid.
+     */
+    private boolean configure(String name, String value, boolean apply) {
+        if (name.equals("latency")) {
+            long latency = parseLong(value, 0);
+            if (apply) {
+                mLatency = latency;
+            }
+        } else if (name.equals("drop-heartbeats")) {
+            double drop = parseRatio(value);
+            if (apply) {
+                mDropHeartbeats = drop;
+            }
+        } else if (name.equals("errors")) {
+            double errors = parseRatio(value);
+            if (apply) {
+                mErrors = errors;
+            }
+        } else if (name.equals("slow-assets")) {
+            long slow = parseLong(value, 0);
+            if (apply) {
+                mSlowAssets = slow;
+            }
+        } else if (name.equals("asset-size")) {
+            int size = parseInt(value, 0);
+            if (apply) {
+                mAssetSize = size;
+            }
+        } else if (name.equals("asset-cache")) {
+            int cache = parseInt(value, 0);
+            if (apply) {
+                mAssetCache = cache;
+            }
+        } else if (name.equals("heartbeat")) {
+            long heartbeat = parseLong(value, 100);
+            if (apply) {
+                mHeartbeat = heartbeat;
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private String settings() {
+        return String.format("latency=%d drop-heartbeats=%.2f errors=%.2f "
+                             + "slow-assets=%d asset-size=%d asset-cache=%d heartbeat=%d",
+                             mLatency, mDropHeartbeats, mErrors,
+                             mSlowAssets, mAssetSize, mAssetCache, mHeartbeat);
+    }
+
+    private String stats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-40s %8s %8s %8s %8s %8s %10s %8s\n",
+                                "client", "total", "page", "beat", "asset",
+                                "errors", "bytes", "req/min"));
+        for (Map.Entry<String, ClientStats> entry :
+                 new TreeMap<String, ClientStats>(mClients).entrySet()) {
+            ClientStats stats = entry.getValue();
+            sb.append(String.format("%-40s %8d %8d %8d %8d %8d %10d %8.1f\n",
+                                    entry.getKey(),
+                                    stats.total.get(), stats.page.get(),
+                                    stats.heartbeat.get(), stats.asset.get(),
+                                    stats.errors.get(), stats.bytes.get(),
+                                    stats.rate));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Update request rates for each client.
+     */
+    private void updateRates() {
+        long now = System.currentTimeMillis();
+        for (ClientStats stats : mClients.values()) {
+            long total = stats.total.get();
+            long elapsed = now - stats.lastReport;
+            if (elapsed > 0) {
+                stats.rate = (total - stats.lastTotal) * 60000.0 / elapsed;
+            }
+            stats.lastTotal = total;
+            stats.lastReport = now;
+        }
+    }
+
+    private void register(HttpServer server) {
+        final HttpHandler page = new FaultyHandler("page") {
+                @Override
+                void serve(HttpExchange exchange, ClientStats stats) throws IOException {
+                    exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                    send(exchange, stats, 200, "text/html; charset=utf-8", receiverPage());
+                }
+            };
+        server.createContext("/", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    /* Only count the receiver itself as a page load */
+                    if (exchange.getRequestURI().getPath().equals("/")) {
+                        page.handle(exchange);
+                        return;
+                    }
+                    try {
+                        ClientStats stats = getStats(exchange);
+                        stats.total.incrementAndGet();
+                        send(exchange, stats, 404, "text/plain",
+                             "Not found\n".getBytes(StandardCharsets.UTF_8));
+                    } finally {
+                        exchange.close();
+                    }
+                }
+            });
+        server.createContext("/heartbeat", new FaultyHandler("heartbeat") {
+                @Override
+                void serve(HttpExchange exchange, ClientStats stats) throws IOException {
+                    exchange.getResponseHeaders().set("Cache-Control", "no-store");
+                    if (roll(mDropHeartbeats)) {
+                        send(exchange, stats, 204, "text/plain", new byte[0]);
+                    } else {
+                        send(exchange, stats, 200, "text/plain",
+                             "alive\n".getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+            });
+        server.createContext("/assets/", new FaultyHandler("asset") {
+                @Override
+                void serve(HttpExchange exchange, ClientStats stats) throws IOException {
+                    String path = exchange.getRequestURI().getPath();
+                    String type;
+                    byte[] body;
+                    if (path.endsWith(".css")) {
+                        type = "text/css";
+                        body = "body { background: #222; color: #eee; }\n"
+                            .getBytes(StandardCharsets.UTF_8);
+                    } else {
+                        /* Padded script to simulate a large asset */
+                        type = "application/javascript";
+                        body = new byte[Math.max(mAssetSize, 4)];
+                        Arrays.fill(body, (byte)' ');
+                        body[0] = '/';
+                        body[1] = '*';
+                        body[body.length - 2] = '*';
+                        body[body.length - 1] = '/';
+                    }
+                    if (mAssetCache > 0) {
+                        exchange.getResponseHeaders().set("Cache-Control",
+                                                          "max-age=" + mAssetCache);
+                    } else {
+                        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+                    }
+                    sleep(mSlowAssets);
+                    send(exchange, stats, 200, type, body);
+                }
+            });
+        server.createContext("/_control", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    try {
+                        int code = 200;
+                        String message;
+                        try {
+                            Map<String, String> params = parseQuery(
+                                exchange.getRequestURI().getRawQuery());
+                            /* Check everything before applying anything */
+                            for (Map.Entry<String, String> param : params.entrySet()) {
+                                if (!configure(param.getKey(), param.getValue(), false)) {
+                                    throw new IllegalArgumentException(
+                                        "unknown setting `" + param.getKey() + "`");
+                                }
+                            }
+                            for (Map.Entry<String, String> param : params.entrySet()) {
+                                configure(param.getKey(), param.getValue(), true);
+                            }
+                            message = settings();
+                            if (!params.isEmpty()) {
+                                log("Settings changed: " + message);
+                            }
+                        } catch (IllegalArgumentException e) {
+                            code = 400;
+                            message = "Invalid setting: " + e.getMessage();
+                        }
+                        send(exchange, null, code, "text/plain",
+                             (message + "\n").getBytes(StandardCharsets.UTF_8));
+                    } finally {
+                        exchange.close();
+                    }
+                }
+            });
+        server.createContext("/_stats", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    try {
+                        send(exchange, null, 200, "text/plain",
+                             stats().getBytes(StandardCharsets.UTF_8));
+                    } finally {
+                        exchange.close();
+                    }
+                }
+            });
+    }
+
+    /**
+     * Read the first PEM block of the given type from a file. Files
+     * produced by certtool contain a textual description before the
+     * PEM block.
+     */
+    private static byte[] readPem(File file, String type) throws IOException {
+        String content = new String(Files.readAllBytes(file.toPath()),
+                                    StandardCharsets.US_ASCII);
+        String begin = "-----BEGIN " + type + "-----";
+        String end = "-----END " + type + "-----";
+        int start = content.indexOf(begin);
+        int stop = content.indexOf(end, start);
+        if (start == -1 || stop == -1) {
+            throw new IOException("no " + type + " found in " + file);
+        }
+        return Base64.getMimeDecoder().decode(
+            content.substring(start + begin.length(), stop));
+    }
+
+    private static byte[] derLength(int length) {
+        if (length < 0x80) {
+            return new byte[] { (byte)length };
+        } else if (length < 0x100) {
+            return new byte[] { (byte)0x81, (byte)length };
+        } else if (length < 0x10000) {
+            return new byte[] { (byte)0x82, (byte)(length >> 8), (byte)length };
+        }
+        return new byte[] { (byte)0x83, (byte)(length >> 16),
+                            (byte)(length >> 8), (byte)length };
+    }
+
+    /**
+     * Convert a PKCS#1 RSA private key (as produced by certtool) to a
+     * PKCS#8 one that can be understood by the JDK.
+     */
+    private static byte[] pkcs1ToPkcs8(byte[] pkcs1) throws IOException {
+        byte[] header = {
+            0x02, 0x01, 0x00, /* version */
+            0x30, 0x0d, 0x06, 0x09, 0x2a, (byte)0x86, 0x48, (byte)0x86,
+            (byte)0xf7, 0x0d, 0x01, 0x01, 0x01, 0x05, 0x00 /* rsaEncryption */
+        };
+        ByteArrayOutputStream inner = new ByteArrayOutputStream();
+        inner.write(header);
+        inner.write(0x04);
+        inner.write(derLength(pkcs1.length));
+        inner.write(pkcs1);
+        ByteArrayOutputStream outer = new ByteArrayOutputStream();
+        outer.write(0x30);
+        outer.write(derLength(inner.size()));
+        inner.writeTo(outer);
+        return outer.toByteArray();
+    }
+
+    /**
+     * Accept client certificates signed by the test CA. Validity
+     * dates are not checked as the test certificates have expired
+     * long ago.
+     */
+    private static class TestCATrustManager implements X509TrustManager {
+        private final X509Certificate mCA;
+
+        TestCATrustManager(X509Certificate ca) {
+            mCA = ca;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType)
+            throws CertificateException {
+            if (chain == null || chain.length == 0) {
+                throw new CertificateException("no client certificate");
+            }
+            try {
+                chain[0].verify(mCA.getPublicKey());
+            } catch (GeneralSecurityException e) {
+                throw new CertificateException("client certificate not signed by test CA", e);
+            }
+            log("Accepted client certificate " + chain[0].getSubjectX500Principal());
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType)
+            throws CertificateException {
+            throw new CertificateException("not a client");
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[] { mCA };
+        }
+    }
+
+    /**
+     * Build a TLS context from the test certificates. The server
+     * certificate is signed by the test CA and client certificates
+     * are checked against the same CA.
+     */
+    private static SSLContext tlsContext(File directory) throws Exception {
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        Certificate server = cf.generateCertificate(new ByteArrayInputStream(
+            readPem(new File(directory, "server-cert.pem"), "CERTIFICATE")));
+        Certificate ca = cf.generateCertificate(new ByteArrayInputStream(
+            readPem(new File(directory, "ca-cert.pem"), "CERTIFICATE")));
+        PrivateKey key = KeyFactory.getInstance("RSA").generatePrivate(
+            new PKCS8EncodedKeySpec(pkcs1ToPkcs8(
+                readPem(new File(directory, "server-key.pem"), "RSA PRIVATE KEY"))));
+
+        char[] password = "changeit".toCharArray();
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("server", key, password, new Certificate[] { server, ca });
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(
+            KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, password);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf.getKeyManagers(),
+                     new TrustManager[] { new TestCATrustManager((X509Certificate)ca) },
+                     null);
+        return context;
+    }
+
+    private static void usage() {
+        System.err.println(
+            "Usage: MockReceiverServer [options]\n"
+            + "  --port PORT               listening port (default: 8080)\n"
+            + "  --tls                     serve over TLS with test certificates\n"
+            + "  --client-auth             require a client certificate (implies --tls)\n"
+            + "  --certificates DIR        directory with test certificates\n"
+            + "                            (default: certificates)\n"
+            + "  --latency MS              latency added to each request\n"
+            + "  --drop-heartbeats RATIO   ratio of heartbeats to drop (0-1)\n"
+            + "  --errors RATIO            ratio of requests answered with a 503 (0-1)\n"
+            + "  --slow-assets MS          additional delay for assets\n"
+            + "  --asset-size BYTES        size of the large asset (default: 102400)\n"
+            + "  --asset-cache SECONDS     max-age for assets (default: 0, no caching)\n"
+            + "  --heartbeat MS            heartbeat period (default: 5000, at least 100)\n"
+            + "\n"
+            + "Settings can be changed at runtime with /_control?setting=value\n"
+            + "(for example /_control?errors=0.5&latency=2000). Per-client\n"
+            + "statistics are available at /_stats.");
+    }
+
+    public static void main(String[] args) throws Exception {
+        final MockReceiverServer mock = new MockReceiverServer();
+        int port = 8080;
+        boolean tls = false;
+        boolean clientAuth = false;
+        File certificates = new File("certificates");
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--tls")) {
+                tls = true;
+            } else if (arg.equals("--client-auth")) {
+                tls = true;
+                clientAuth = true;
+            } else if (arg.startsWith("--") && i + 1 < args.length) {
+                String name = arg.substring(2);
+                String value = args[++i];
+                try {
+                    if (name.equals("port")) {
+                        port = Integer.parseInt(value);
+                    } else if (name.equals("certificates")) {
+                        certificates = new File(value);
+                    } else if (!mock.configure(name, value, true)) {
+                        usage();
+                        System.exit(1);
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid value for " + arg + ": " + e.getMessage());
+                    System.exit(1);
+                }
+            } else {
+                usage();
+                System.exit(arg.equals("--help") ? 0 : 1);
+            }
+        }
+
+        HttpServer server;
+        if (tls) {
+            HttpsServer https = HttpsServer.create(new InetSocketAddress(port), 0);
+            final boolean needClientAuth = clientAuth;
+            https.setHttpsConfigurator(new HttpsConfigurator(tlsContext(certificates)) {
+                    @Override
+                    public void configure(HttpsParameters params) {
+                        SSLParameters sslParams = getSSLContext().getDefaultSSLParameters();
+                        sslParams.setNeedClientAuth(needClientAuth);
+                        params.setSSLParameters(sslParams);
+                    }
+                });
+            server = https;
+        } else {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        }
+        mock.register(server);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        log("Listening on " + (tls ? "https" : "http") + "://0.0.0.0:" + port
+            + (clientAuth ? "/ (client certificate required)" : "/"));
+        log("Settings: " + mock.settings());
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    mock.updateRates();
+                    if (!mock.mClients.isEmpty()) {
+                        System.out.print(mock.stats());
+                    }
+                }
+            }, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+}